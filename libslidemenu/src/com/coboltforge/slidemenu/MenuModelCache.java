@@ -0,0 +1,225 @@
+/*
+ * A sliding menu for Android, very much like the Google+ and Facebook apps have.
+ *
+ * Copyright (C) 2012 CoboltForge
+ *
+ * Based upon the great work done by stackoverflow user Scirocco (http://stackoverflow.com/a/11367825/361413), thanks a lot!
+ * The XML parsing code comes from https://github.com/darvds/RibbonMenu, thanks!
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.coboltforge.slidemenu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import com.coboltforge.slidemenu.SlideMenu.SlideMenuItem;
+
+/*
+ * Keeps the items parsed from a menu resource in a file in the cache dir, so the next
+ * process start doesn't need to parse the menu XML again. There's one file per configuration.
+ * Each file records the app version, APK and configuration it was made for and is ignored
+ * (and rewritten) if any of these changed.
+ */
+class MenuModelCache {
+
+	private static final int MAGIC = 0x534d4d31; // "SMM1"
+	// id, icon resource and label length
+	private static final int MIN_ITEM_SIZE = 12;
+
+	// the part of the key that can't change while the process lives
+	private static String appKey;
+
+
+	/**
+	 * @return The cached items for the given menu or null if there's no valid cache.
+	 */
+	static ArrayList<SlideMenuItem> read(Context ctx, int menuResource) {
+		File f = getFile(ctx, menuResource);
+		if(!f.exists())
+			return null;
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(f, "r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if(buf.getInt() != MAGIC || !getKey(ctx).equals(getString(buf)))
+				return null;
+
+			int count = buf.getInt();
+			if(count < 0 || count > buf.remaining() / MIN_ITEM_SIZE)
+				return null;
+			ArrayList<SlideMenuItem> items = new ArrayList<SlideMenuItem>(count);
+			for(int i = 0; i < count; ++i) {
+				SlideMenuItem item = new SlideMenuItem();
+				item.id = buf.getInt();
+				item.iconResource = buf.getInt(); // icon is loaded once shown
+				item.label = getString(buf);
+				items.add(item);
+			}
+			return items;
+		}
+		catch(Exception e) {
+			// not readable or corrupt, will be rewritten
+			return null;
+		}
+		finally {
+			try {
+				if(raf != null)
+					raf.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+
+	/**
+	 * Writes the given items to the cache in the background.
+	 */
+	static void write(Context ctx, int menuResource, List<SlideMenuItem> items) {
+		final File f = getFile(ctx, menuResource);
+		final File dir = ctx.getCacheDir();
+		final byte[] data;
+
+		// serialize right away, the items might get changed later on
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			putString(out, getKey(ctx));
+			out.writeInt(items.size());
+			for(SlideMenuItem item : items) {
+				out.writeInt(item.id);
+				out.writeInt(item.iconResource);
+				putString(out, item.label);
+			}
+			out.close();
+			data = bytes.toByteArray();
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// write to a temp file first so a reader never sees a half-written one,
+				// a unique one so concurrent writers don't mix up their data
+				File tmp = null;
+				FileOutputStream out = null;
+				try {
+					tmp = File.createTempFile(f.getName(), ".tmp", dir);
+					out = new FileOutputStream(tmp);
+					out.write(data);
+					out.close();
+					out = null;
+					if(!tmp.renameTo(f))
+						tmp.delete();
+				}
+				catch(IOException e) {
+					e.printStackTrace();
+					if(tmp != null)
+						tmp.delete();
+				}
+				finally {
+					try {
+						if(out != null)
+							out.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}, "SlideMenu cache writer").start();
+	}
+
+
+	// one file per menu and configuration, so i.e. rotating doesn't overwrite the other orientation's file
+	private static File getFile(Context ctx, int menuResource) {
+		return new File(ctx.getCacheDir(), "slidemenu_" + Integer.toHexString(menuResource)
+				+ "_" + Integer.toHexString(getConfigKey(ctx).hashCode()) + ".cache");
+	}
+
+
+	// what the parsed items depend on: app version, APK and resource configuration
+	private static String getKey(Context ctx) {
+		if(appKey == null) {
+			int versionCode = 0;
+			try {
+				versionCode = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0).versionCode;
+			}
+			catch(Exception e) {
+				// keep 0, the APK timestamp still changes on update
+			}
+			appKey = versionCode + "/" + new File(ctx.getApplicationInfo().sourceDir).lastModified();
+		}
+
+		return appKey + "/" + getConfigKey(ctx);
+	}
+
+
+	// the parts of the configuration that resource qualifiers (menu-land, values-sw600dp etc.) can select by
+	@SuppressLint("NewApi")
+	private static String getConfigKey(Context ctx) {
+		Configuration c = ctx.getResources().getConfiguration();
+		String key = c.locale + "/" + c.mcc + "/" + c.mnc + "/" + c.orientation + "/" + c.screenLayout;
+		// uiMode (night mode, car dock etc.) is only there from API level 8 on
+		if(Build.VERSION.SDK_INT >= 8)
+			key += "/" + c.uiMode;
+		// screen size in dp from API level 13 on
+		if(Build.VERSION.SDK_INT >= 13)
+			key += "/" + c.smallestScreenWidthDp + "/" + c.screenWidthDp + "/" + c.screenHeightDp;
+		return key;
+	}
+
+
+	// strings are stored as UTF-8 with their byte length in front, -1 for null
+	private static void putString(DataOutputStream out, String s) throws IOException {
+		if(s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes("UTF-8");
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String getString(ByteBuffer buf) throws IOException {
+		int len = buf.getInt();
+		if(len == -1)
+			return null;
+		if(len < 0 || len > buf.remaining())
+			throw new IOException("corrupt string length " + len);
+		byte[] b = new byte[len];
+		buf.get(b);
+		return new String(b, "UTF-8");
+	}
+
+}
@@ -22,11 +22,19 @@
 package com.coboltforge.slidemenu;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.xmlpull.v1.XmlPullParser;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.XmlResourceParser;
 import android.graphics.Rect;
@@ -34,6 +42,8 @@ import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
@@ -44,7 +54,7 @@ import android.view.animation.Interpolator;
 import android.view.animation.TranslateAnimation;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ListView;
@@ -57,52 +67,510 @@ public class SlideMenu extends SlideView {
 		public int id;
 		public Drawable icon;
 		public String label;
+		/**
+		 * Optional icon resource. If set, the icon is loaded from it when needed
+		 * and can be released on memory pressure.
+		 */
+		public int iconResource;
+	}
+
+	// shared by both adapters
+	private static class MenuItemHolder {
+		public TextView label;
+		public ImageView icon;
+
+		static View getRowView(Activity act, View convertView, Typeface itemFont) {
+			View rowView = convertView;
+			if (rowView == null) {
+				LayoutInflater inflater = act.getLayoutInflater();
+				rowView = inflater.inflate(R.layout.slidemenu_listitem, null);
+				MenuItemHolder viewHolder = new MenuItemHolder();
+				viewHolder.label = (TextView) rowView.findViewById(R.id.menu_label);
+				if(itemFont != null)
+					viewHolder.label.setTypeface(itemFont);
+				viewHolder.icon = (ImageView) rowView.findViewById(R.id.menu_icon);
+				rowView.setTag(viewHolder);
+			}
+			return rowView;
+		}
+
+		// item can be null for not-yet-loaded items
+		void bind(Activity act, SlideMenuItem item) {
+			if(item == null) {
+				label.setText(null);
+				icon.setImageDrawable(null);
+				return;
+			}
+
+			// (re)load icon if not there
+			if(item.icon == null && item.iconResource != 0)
+				item.icon = act.getResources().getDrawable(item.iconResource);
+
+			label.setText(item.label);
+			icon.setImageDrawable(item.icon);
+		}
 	}
 
 	// a simple adapter
-	private static class SlideMenuAdapter extends ArrayAdapter<SlideMenuItem> {
+	private static class SlideMenuAdapter extends BaseAdapter {
 		Activity act;
 		SlideMenuItem[] items;
 		Typeface itemFont;
 
-		class MenuItemHolder {
-			public TextView label;
-			public ImageView icon;
-		}
-
 		public SlideMenuAdapter(Activity act, SlideMenuItem[] items, Typeface itemFont) {
-			super(act, R.id.menu_label, items);
 			this.act = act;
 			this.items = items;
 			this.itemFont = itemFont;
 		}
+
+		void setItems(SlideMenuItem[] items) {
+			this.items = items;
+			notifyDataSetChanged();
+		}
+
+		@Override
+		public int getCount() {
+			return items.length;
+		}
+		@Override
+		public SlideMenuItem getItem(int position) {
+			return items[position];
+		}
+		@Override
+		public long getItemId(int position) {
+			return position;
+		}
 		@Override
 		public View getView(int position, View convertView, ViewGroup parent) {
-			View rowView = convertView;
-			if (rowView == null) {
-				LayoutInflater inflater = act.getLayoutInflater();
-				rowView = inflater.inflate(R.layout.slidemenu_listitem, null);
-				MenuItemHolder viewHolder = new MenuItemHolder();
-				viewHolder.label = (TextView) rowView.findViewById(R.id.menu_label);
-				if(itemFont != null)
-					viewHolder.label.setTypeface(itemFont);
-				viewHolder.icon = (ImageView) rowView.findViewById(R.id.menu_icon);
-				rowView.setTag(viewHolder);
+			View rowView = MenuItemHolder.getRowView(act, convertView, itemFont);
+
+			MenuItemHolder holder = (MenuItemHolder) rowView.getTag();
+			holder.bind(act, items[position]);
+
+			return rowView;
+		}
+	}
+
+	// one committed batch of changes, immutable so it can be replayed later on
+	private static final class ItemEdit {
+		final SlideMenuItem[] added;
+		final HashSet<Integer> removedIds;
+		final boolean cleared;
+
+		ItemEdit(SlideMenuItem[] added, HashSet<Integer> removedIds, boolean cleared) {
+			this.added = added;
+			this.removedIds = removedIds;
+			this.cleared = cleared;
+		}
+
+		SlideMenuItem[] apply(SlideMenuItem[] base) {
+			ArrayList<SlideMenuItem> items = new ArrayList<SlideMenuItem>();
+			if(!cleared)
+				for(SlideMenuItem item : base)
+					if(!removedIds.contains(item.id))
+						items.add(item);
+			for(SlideMenuItem item : added)
+				items.add(item);
+			return items.toArray(new SlideMenuItem[items.size()]);
+		}
+	}
+
+	// an immutable version of the menu items, replaced as a whole on every change
+	private static final class ItemSnapshot {
+		// null if dropped on memory pressure, the XML items plus pendingEdits then
+		final SlideMenuItem[] items;
+		// edits committed while items was dropped, applied once the XML is reparsed on the UI thread
+		final ItemEdit[] pendingEdits;
+		// whether items are exactly what parseXml() gives, so they can be dropped and reparsed
+		final boolean reloadable;
+
+		ItemSnapshot(SlideMenuItem[] items, boolean reloadable) {
+			this(items, null, reloadable);
+		}
+
+		ItemSnapshot(SlideMenuItem[] items, ItemEdit[] pendingEdits, boolean reloadable) {
+			this.items = items;
+			this.pendingEdits = pendingEdits;
+			this.reloadable = reloadable;
+		}
+
+		// the XML items, not parsed (yet)
+		static ItemSnapshot dropped() {
+			return new ItemSnapshot(null, new ItemEdit[0], true);
+		}
+	}
+
+	/**
+	 * Collects changes to the menu items and applies them all at once on {@link #commit()}.
+	 * Get one via {@link SlideMenu#edit()}. Can be used from any thread, but an editor
+	 * itself should only be used by one thread. Items should not be modified once added.
+	 */
+	public class MenuItemEditor {
+		private final ArrayList<SlideMenuItem> added = new ArrayList<SlideMenuItem>();
+		private final HashSet<Integer> removedIds = new HashSet<Integer>();
+		private boolean cleared;
+
+		private MenuItemEditor() {
+		}
+
+		/**
+		 * Adds an item at the end.
+		 * @param item
+		 * @return This editor.
+		 */
+		public MenuItemEditor add(SlideMenuItem item) {
+			added.add(item);
+			return this;
+		}
+
+		/**
+		 * Removes all existing items with the given id. Does not affect items added with this editor.
+		 * @param itemId
+		 * @return This editor.
+		 */
+		public MenuItemEditor remove(int itemId) {
+			removedIds.add(itemId);
+			return this;
+		}
+
+		/**
+		 * Removes all existing items. Does not affect items added with this editor.
+		 * @return This editor.
+		 */
+		public MenuItemEditor clear() {
+			cleared = true;
+			return this;
+		}
+
+		/**
+		 * Publishes the changes. A shown menu picks them up on its next UI thread cycle.
+		 */
+		public void commit() {
+			ItemEdit edit = new ItemEdit(added.toArray(new SlideMenuItem[added.size()]),
+					new HashSet<Integer>(removedIds), cleared);
+
+			// apply to the latest snapshot, again if someone else published in between
+			for(;;) {
+				ItemSnapshot current = itemSnapshot.get();
+
+				ItemSnapshot next;
+				if(current.items != null)
+					next = new ItemSnapshot(edit.apply(current.items), false);
+				else {
+					// dropped: don't reparse here, queue the edit for the UI thread
+					ItemEdit[] edits = new ItemEdit[current.pendingEdits.length + 1];
+					System.arraycopy(current.pendingEdits, 0, edits, 0, current.pendingEdits.length);
+					edits[current.pendingEdits.length] = edit;
+					next = new ItemSnapshot(null, edits, false);
+				}
+
+				if(itemSnapshot.compareAndSet(current, next))
+					break;
+			}
+
+			// only one pickup pending at a time, no matter how many commits
+			if(publishPending.compareAndSet(false, true))
+				handler.post(publishItems);
+		}
+	}
+
+	/*
+	 * An adapter that keeps only a bounded window of pages in memory
+	 * and fetches missing ones from a MenuItemSource as the list scrolls.
+	 * Inserts and removals shift the loaded items instead of dropping them,
+	 * only positions that aren't loaded (i.e. new ones) get requested.
+	 */
+	private static class PagedMenuAdapter extends BaseAdapter {
+
+		/*
+		 * A load in flight. It fills [offset, end), end is pulled in by changes notified
+		 * after the request, as the source might already have seen them or not.
+		 */
+		static class RangeLoad {
+			final int offset;
+			int end;
+			boolean cancelled;
+
+			RangeLoad(int offset, int end) {
+				this.offset = offset;
+				this.end = end;
+			}
+		}
+
+		Activity act; // set on inflation
+		SlideMenuInterface.MenuItemSource source;
+		Typeface itemFont;
+		final int pageSize;
+		final int maxPages;
+		final Handler handler = new Handler(Looper.getMainLooper());
+		// page index -> items, in access order so the least recently used page gets evicted.
+		// Items are null where not known (yet), i.e. at freshly inserted positions.
+		final LinkedHashMap<Integer, SlideMenuItem[]> pages;
+		final ArrayList<RangeLoad> loadsInFlight = new ArrayList<RangeLoad>();
+		// notify*() calls so far, from any thread, and how many of these were applied on the UI thread
+		final AtomicInteger changesNotified = new AtomicInteger();
+		int changesApplied;
+		// pages the last layout pass needed, these are never evicted
+		final HashSet<Integer> touchedPages = new HashSet<Integer>();
+		boolean layoutPassPending;
+		final Runnable endLayoutPass = new Runnable() {
+			@Override
+			public void run() {
+				layoutPassPending = false;
+			}
+		};
+		int count;
+
+		public PagedMenuAdapter(SlideMenuInterface.MenuItemSource source, int pageSize, int maxPages) {
+			this.source = source;
+			this.pageSize = Math.max(pageSize, 1);
+			// the page being looked at plus the ones before and after it
+			this.maxPages = Math.max(maxPages, 3);
+			this.pages = new LinkedHashMap<Integer, SlideMenuItem[]>(this.maxPages + 1, 0.75f, true);
+			this.count = source.getCount();
+		}
+
+		@Override
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public SlideMenuItem getItem(int position) {
+			int page = position / pageSize;
+			int index = position % pageSize;
+
+			touchedPages.add(page);
+
+			// prefetch the neighbour the user is scrolling towards
+			if(index >= pageSize/2) {
+				if((page+1) * pageSize < count) {
+					touchedPages.add(page+1);
+					requestPage(page+1);
+				}
+			}
+			else if(page > 0) {
+				touchedPages.add(page-1);
+				requestPage(page-1);
+			}
+
+			SlideMenuItem item = peekItem(position);
+			if(item == null)
+				requestPage(page);
+			return item;
+		}
+
+		@Override
+		public long getItemId(int position) {
+			return position;
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			// the first getView() after the UI thread was idle starts a new layout pass
+			if(!layoutPassPending) {
+				layoutPassPending = true;
+				touchedPages.clear();
+				handler.post(endLayoutPass);
 			}
 
+			View rowView = MenuItemHolder.getRowView(act, convertView, itemFont);
+
+			// not loaded yet: show an empty row until the page arrives
 			MenuItemHolder holder = (MenuItemHolder) rowView.getTag();
-			String s = items[position].label;
-			holder.label.setText(s);
-			holder.icon.setImageDrawable(items[position].icon);
+			holder.bind(act, getItem(position));
 
 			return rowView;
 		}
+
+		private SlideMenuItem peekItem(int position) {
+			SlideMenuItem[] items = pages.get(position / pageSize);
+			int index = position % pageSize;
+			return items != null && index < items.length ? items[index] : null;
+		}
+
+		private boolean isLoading(int position) {
+			for(RangeLoad load : loadsInFlight)
+				if(position >= load.offset && position < load.end)
+					return true;
+			return false;
+		}
+
+		private int pageLength(int page) {
+			return Math.max(0, Math.min(pageSize, count - page * pageSize));
+		}
+
+		// requests each run of positions in the page that is neither loaded nor being loaded
+		private void requestPage(int page) {
+			// positions are about to move, wait for the change to arrive
+			if(changesNotified.get() != changesApplied)
+				return;
+
+			int first = page * pageSize;
+			int end = first + pageLength(page);
+			int runStart = -1;
+			for(int position = first; position <= end; ++position) {
+				boolean missing = position < end && peekItem(position) == null && !isLoading(position);
+				if(missing && runStart < 0)
+					runStart = position;
+				else if(!missing && runStart >= 0) {
+					requestRange(runStart, position);
+					runStart = -1;
+				}
+			}
+		}
+
+		private void requestRange(int offset, int end) {
+			final RangeLoad load = new RangeLoad(offset, end);
+			loadsInFlight.add(load);
+
+			source.loadPage(offset, end - offset, new SlideMenuInterface.PageReceiver() {
+				@Override
+				public void onPageLoaded(int offset, final SlideMenuItem[] items) {
+					// always post, even if on the UI thread: we might be inside getView()
+					handler.post(new Runnable() {
+						@Override
+						public void run() {
+							pageLoaded(load, items);
+						}
+					});
+				}
+			});
+		}
+
+		private void pageLoaded(RangeLoad load, SlideMenuItem[] items) {
+			loadsInFlight.remove(load);
+			// with a change on its way, it's unknown which positions these are;
+			// applying the change re-requests what's missing
+			if(load.cancelled || changesNotified.get() != changesApplied)
+				return;
+
+			// only what's before any change notified meanwhile is sure to be right
+			for(int i = 0; i < items.length && load.offset + i < load.end; ++i)
+				putItem(load.offset + i, items[i]);
+			evictPages();
+			// also re-requests what was cut off
+			notifyDataSetChanged();
+		}
+
+		private void putItem(int position, SlideMenuItem item) {
+			if(position >= count)
+				return;
+			int page = position / pageSize;
+			SlideMenuItem[] items = pages.get(page);
+			if(items == null || items.length < pageLength(page)) {
+				SlideMenuItem[] grown = new SlideMenuItem[pageLength(page)];
+				if(items != null)
+					System.arraycopy(items, 0, grown, 0, items.length);
+				items = grown;
+				pages.put(page, items);
+			}
+			items[position % pageSize] = item;
+		}
+
+		// drops least recently used pages the current layout doesn't need
+		private void evictPages() {
+			Iterator<Integer> it = pages.keySet().iterator();
+			while(pages.size() > maxPages && it.hasNext())
+				if(!touchedPages.contains(it.next()))
+					it.remove();
+		}
+
+		/*
+		 * Moves loaded items at or after position by n, negative n for removals.
+		 * Pages before the one containing position are untouched. Loads in flight
+		 * keep only what they load before position.
+		 */
+		private void shift(int position, int n) {
+			int first = position / pageSize;
+
+			ArrayList<Integer> moved = new ArrayList<Integer>();
+			ArrayList<SlideMenuItem> movedItems = new ArrayList<SlideMenuItem>();
+			Iterator<Map.Entry<Integer, SlideMenuItem[]>> it = pages.entrySet().iterator();
+			while(it.hasNext()) {
+				Map.Entry<Integer, SlideMenuItem[]> entry = it.next();
+				if(entry.getKey() < first)
+					continue;
+				SlideMenuItem[] items = entry.getValue();
+				for(int i = 0; i < items.length; ++i) {
+					int pos = entry.getKey() * pageSize + i;
+					if(items[i] == null)
+						continue;
+					if(pos >= position) {
+						if(n < 0 && pos < position - n)
+							continue; // removed
+						pos += n;
+					}
+					moved.add(pos);
+					movedItems.add(items[i]);
+				}
+				it.remove();
+			}
+
+			count = Math.max(0, count + n);
+			for(int i = 0; i < moved.size(); ++i)
+				putItem(moved.get(i), movedItems.get(i));
+
+			for(RangeLoad load : loadsInFlight)
+				load.end = Math.min(load.end, position);
+
+			evictPages();
+			notifyDataSetChanged();
+		}
+
+		// any thread, before posting the change to the UI thread
+		void changeNotified() {
+			changesNotified.incrementAndGet();
+		}
+
+		void itemsInserted(int position, int n) {
+			++changesApplied;
+			shift(position, n);
+		}
+
+		void itemsRemoved(int position, int n) {
+			++changesApplied;
+			shift(position, -Math.max(0, Math.min(n, count - position)));
+		}
+
+		void reload() {
+			++changesApplied;
+			count = source.getCount();
+			trim();
+			notifyDataSetChanged();
+		}
+
+		// drops all pages, they get loaded again once needed
+		void trim() {
+			for(RangeLoad load : loadsInFlight)
+				load.cancelled = true;
+			loadsInFlight.clear();
+			pages.clear();
+			touchedPages.clear();
+		}
 	}
 
+	private static boolean modelCacheEnabled = true;
+
 	private Drawable headerImage;
 	private Typeface font;
 
-	private ArrayList<SlideMenuItem> menuItemList;
+	private final AtomicReference<ItemSnapshot> itemSnapshot = new AtomicReference<ItemSnapshot>(ItemSnapshot.dropped());
+	private final AtomicBoolean publishPending = new AtomicBoolean(false);
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	// hands the latest snapshot to the shown menu, runs on the UI thread
+	private final Runnable publishItems = new Runnable() {
+		@Override
+		public void run() {
+			publishPending.set(false);
+			if(adapter != null)
+				adapter.setItems(getItemSnapshot().items);
+		}
+	};
+	private int menuResource;
+	private SlideMenuAdapter adapter;
+	// set on the UI thread, read by the notify*() methods from any thread
+	private volatile PagedMenuAdapter pagedAdapter;
 	private SlideMenuInterface.OnSlideMenuItemClickListener callback;
 
 	/**
@@ -158,10 +626,22 @@ public class SlideMenu extends SlideView {
 
 		this.callback = cb;
 		// and get our menu
-		parseXml(menuResource);
+		this.menuResource = menuResource;
+		itemSnapshot.set(new ItemSnapshot(parseXml(menuResource), true));
 
 	}
 
+	/**
+	 * Sets whether menus parsed from XML are cached in the app's cache dir, so that they
+	 * don't need to be parsed again on the next start. The cache is invalidated when the
+	 * app is updated or the configuration (i.e. locale) changes. Enabled by default.
+	 * Affects SlideMenus initialized afterwards.
+	 * @param enabled
+	 */
+	public static void setModelCacheEnabled(boolean enabled) {
+		modelCacheEnabled = enabled;
+	}
+
 	/**
 	 * Sets an optional image to be displayed on top of the menu.
 	 * @param d
@@ -180,19 +660,107 @@ public class SlideMenu extends SlideView {
 
 
 	/**
-	 * Dynamically adds a menu item.
+	 * Dynamically adds a menu item. Can be called from any thread.
 	 * @param item
 	 */
 	public void addMenuItem(SlideMenuItem item) {
-		menuItemList.add(item);
+		edit().add(item).commit();
 	}
 
 
 	/**
-	 * Empties the SlideMenu.
+	 * Empties the SlideMenu. Can be called from any thread.
 	 */
 	public void clearMenuItems() {
-		menuItemList.clear();
+		edit().clear().commit();
+	}
+
+
+	/**
+	 * Starts a batch of changes to the menu items, to be published with
+	 * {@link MenuItemEditor#commit()}. Can be called from any thread.
+	 * @return A new editor.
+	 */
+	public MenuItemEditor edit() {
+		return new MenuItemEditor();
+	}
+
+
+	/**
+	 * Makes the SlideMenu get its items from the given source instead of from the menu XML
+	 * or {@link #addMenuItem addMenuItem()}. Items are loaded in pages as the list scrolls,
+	 * only the most recently used pages are kept in memory. Call on the UI thread,
+	 * can be called before {@link #init init()}.
+	 * @param source The source to load items from, null to go back to the regular item list.
+	 * @param pageSize Number of items per page.
+	 * @param maxPages Maximum number of pages to keep in memory.
+	 */
+	public void setMenuItemSource(SlideMenuInterface.MenuItemSource source, int pageSize, int maxPages) {
+		if(source != null)
+			pagedAdapter = new PagedMenuAdapter(source, pageSize, maxPages);
+		else
+			pagedAdapter = null;
+	}
+
+	/**
+	 * Like {@link #setMenuItemSource(SlideMenuInterface.MenuItemSource, int, int)}
+	 * with pages of 50 items and at most 5 pages in memory.
+	 * @param source
+	 */
+	public void setMenuItemSource(SlideMenuInterface.MenuItemSource source) {
+		setMenuItemSource(source, 50, 5);
+	}
+
+	/**
+	 * Tells the SlideMenu that the menu item source got new items. Can be called from any thread.
+	 * @param position Position of the first new item.
+	 * @param count Number of new items.
+	 */
+	public void notifyMenuItemsInserted(final int position, final int count) {
+		final PagedMenuAdapter adap = pagedAdapter;
+		if(adap == null)
+			return;
+		adap.changeNotified();
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				adap.itemsInserted(position, count);
+			}
+		});
+	}
+
+	/**
+	 * Tells the SlideMenu that items were removed from the menu item source. Can be called from any thread.
+	 * @param position Position of the first removed item.
+	 * @param count Number of removed items.
+	 */
+	public void notifyMenuItemsRemoved(final int position, final int count) {
+		final PagedMenuAdapter adap = pagedAdapter;
+		if(adap == null)
+			return;
+		adap.changeNotified();
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				adap.itemsRemoved(position, count);
+			}
+		});
+	}
+
+	/**
+	 * Tells the SlideMenu to reload everything from the menu item source. Can be called from any thread.
+	 */
+	public void notifyMenuItemsChanged() {
+		final PagedMenuAdapter adap = pagedAdapter;
+		if(adap == null)
+			return;
+		adap.changeNotified();
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				adap.reload();
+			}
+		});
 	}
 
     @Override
@@ -215,15 +783,25 @@ public class SlideMenu extends SlideView {
 
         // connect the menu's listview
         ListView list = (ListView) v.findViewById(R.id.menu_listview);
-        SlideMenuItem[] items = menuItemList.toArray(new SlideMenuItem[menuItemList.size()]);
-        SlideMenuAdapter adap = new SlideMenuAdapter(act, items, font);
-        list.setAdapter(adap);
+        if(pagedAdapter != null) {
+            pagedAdapter.act = act;
+            pagedAdapter.itemFont = font;
+            list.setAdapter(pagedAdapter);
+        }
+        else {
+            adapter = new SlideMenuAdapter(act, getItemSnapshot().items, font);
+            list.setAdapter(adapter);
+        }
         list.setOnItemClickListener(new OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
 
+                SlideMenuItem item = (SlideMenuItem) parent.getItemAtPosition(position);
+                if(item == null)
+                    return; // not loaded yet
+
                 if(callback != null)
-                    callback.onSlideMenuItemClick(menuItemList.get(position).id);
+                    callback.onSlideMenuItemClick(item.id);
 
                 hide();
             }
@@ -234,14 +812,74 @@ public class SlideMenu extends SlideView {
     }
 
 
+	/**
+	 * Releases memory in stages according to the given level: the hidden menu's views first,
+	 * then item icons that can be reloaded from their resource, then the menu items themselves
+	 * if they can be reparsed. Everything is rebuilt on the next {@link #show show()}.
+	 */
+	@Override
+	protected void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+
+		if(isMenuShown())
+			return;
+
+		// the adapter of the hidden menu, gets recreated with the menu
+		adapter = null;
+
+		ItemSnapshot current = itemSnapshot.get();
+
+		if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && current.items != null)
+			for(SlideMenuItem item : current.items)
+				if(item.iconResource != 0)
+					item.icon = null;
+
+		if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+			// unless somebody changed the items meanwhile
+			if(current.items != null && current.reloadable)
+				itemSnapshot.compareAndSet(current, ItemSnapshot.dropped());
+			if(pagedAdapter != null)
+				pagedAdapter.trim();
+		}
+	}
+
+
+	/*
+	 * The current items, reparsed if they were dropped on memory pressure, with the edits
+	 * committed meanwhile replayed on top. UI thread only, writers never reparse.
+	 */
+	private ItemSnapshot getItemSnapshot() {
+		for(;;) {
+			ItemSnapshot current = itemSnapshot.get();
+			if(current.items != null)
+				return current;
+
+			SlideMenuItem[] items = parseXml(menuResource);
+			for(ItemEdit edit : current.pendingEdits)
+				items = edit.apply(items);
+
+			ItemSnapshot next = new ItemSnapshot(items, current.reloadable);
+			if(itemSnapshot.compareAndSet(current, next))
+				return next;
+		}
+	}
+
+
 	// originally: https://github.com/darvds/RibbonMenu
 	// credit where credits due!
-	private void parseXml(int menu){
+	private SlideMenuItem[] parseXml(int menu){
 
-		menuItemList = new ArrayList<SlideMenuItem>();
+		ArrayList<SlideMenuItem> menuItemList = new ArrayList<SlideMenuItem>();
 
 		// use 0 id to indicate no menu (as specified in JavaDoc)
-		if(menu == 0) return;
+		if(menu == 0) return new SlideMenuItem[0];
+
+		// already parsed on an earlier run?
+		if(modelCacheEnabled) {
+			ArrayList<SlideMenuItem> cached = MenuModelCache.read(act, menu);
+			if(cached != null)
+				return cached.toArray(new SlideMenuItem[cached.size()]);
+		}
 
 		try{
 			XmlResourceParser xpp = act.getResources().getXml(menu);
@@ -266,7 +904,8 @@ public class SlideMenu extends SlideView {
 						SlideMenuItem item = new SlideMenuItem();
 						item.id = Integer.valueOf(resId.replace("@", ""));
 						if (iconId != null) {
-							item.icon = act.getResources().getDrawable(Integer.valueOf(iconId.replace("@", "")));
+							item.iconResource = Integer.valueOf(iconId.replace("@", ""));
+							item.icon = act.getResources().getDrawable(item.iconResource);
 						}
 						item.label = resourceIdToString(textId);
 
@@ -279,11 +918,14 @@ public class SlideMenu extends SlideView {
 
 			}
 
+			if(modelCacheEnabled)
+				MenuModelCache.write(act, menu, menuItemList);
 
 		} catch(Exception e){
 			e.printStackTrace();
 		}
 
+		return menuItemList.toArray(new SlideMenuItem[menuItemList.size()]);
 	}
 
 
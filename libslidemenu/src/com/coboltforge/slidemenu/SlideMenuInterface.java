@@ -26,4 +26,39 @@ public interface SlideMenuInterface {
 	interface OnSlideMenuItemClickListener {
 		public void onSlideMenuItemClick(int itemId);
 	}
+
+	/**
+	 * Supplies menu items page by page instead of all at once.
+	 * Set one via {@link SlideMenu#setMenuItemSource SlideMenu.setMenuItemSource()}.
+	 * <p>
+	 * When the items change, call the matching SlideMenu.notifyMenuItems*() method right after
+	 * the change, i.e. while still holding whatever lock keeps {@link #loadPage loadPage()} from
+	 * reading the data meanwhile. Loads that were running when a change got notified are
+	 * only used up to the changed position, the rest is requested again.
+	 */
+	interface MenuItemSource {
+		/**
+		 * Called on the UI thread, so this should be cheap.
+		 * @return The total number of items.
+		 */
+		public int getCount();
+
+		/**
+		 * Requests a range of items, usually a page or the new items within one.
+		 * May load asynchronously, the receiver can be called from any thread.
+		 * Should hand over exactly the requested number of items, missing ones get requested again.
+		 * @param offset Position of the first item to load.
+		 * @param count Number of items to load.
+		 * @param receiver Receiver to hand the loaded items to.
+		 */
+		public void loadPage(int offset, int count, PageReceiver receiver);
+	}
+
+	interface PageReceiver {
+		/**
+		 * @param offset The offset the page was requested for.
+		 * @param items The loaded items, in order.
+		 */
+		public void onPageLoaded(int offset, SlideMenu.SlideMenuItem[] items);
+	}
 }
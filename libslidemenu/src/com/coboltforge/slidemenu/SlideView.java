@@ -21,25 +21,38 @@
 
 package com.coboltforge.slidemenu;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
 
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
+import android.view.SurfaceView;
+import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
+import android.view.animation.Animation;
 import android.view.animation.Interpolator;
 import android.view.animation.TranslateAnimation;
+import android.webkit.WebView;
 import android.widget.FrameLayout;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ListView;
 
@@ -50,6 +63,59 @@ public abstract class SlideView extends LinearLayout {
 	private final static String KEY_STATUSBARHEIGHT = "statusBarHeight";
 	private final static String KEY_SUPERSTATE = "superState";
 
+	/*
+	 * Forwards memory pressure to all live SlideViews. There's only one instance, registered
+	 * once with the application context, which outlives the activities. It holds the
+	 * SlideViews weakly so it never keeps an activity alive.
+	 */
+	@SuppressLint("NewApi")
+	private static class TrimMemoryCallbacks implements ComponentCallbacks2 {
+		private static TrimMemoryCallbacks instance;
+		private final ArrayList<WeakReference<SlideView>> slideViews = new ArrayList<WeakReference<SlideView>>();
+
+		// UI thread only, as are the callbacks
+		static void add(Context ctx, SlideView slideView) {
+			if(instance == null) {
+				instance = new TrimMemoryCallbacks();
+				ctx.getApplicationContext().registerComponentCallbacks(instance);
+			}
+			remove(slideView); // no duplicates if init() is called again
+			instance.slideViews.add(new WeakReference<SlideView>(slideView));
+		}
+
+		// also prunes collected ones
+		static void remove(SlideView slideView) {
+			if(instance == null)
+				return;
+			Iterator<WeakReference<SlideView>> it = instance.slideViews.iterator();
+			while(it.hasNext()) {
+				SlideView v = it.next().get();
+				if(v == null || v == slideView)
+					it.remove();
+			}
+		}
+
+		@Override
+		public void onTrimMemory(int level) {
+			remove(null);
+			// copy, a SlideView might go away while trimming
+			for(WeakReference<SlideView> ref : new ArrayList<WeakReference<SlideView>>(slideViews)) {
+				SlideView v = ref.get();
+				if(v != null)
+					v.onTrimMemory(level);
+			}
+		}
+
+		@Override
+		public void onLowMemory() {
+			onTrimMemory(TRIM_MEMORY_COMPLETE);
+		}
+
+		@Override
+		public void onConfigurationChanged(Configuration newConfig) {
+		}
+	}
+
 
     // this tells whether the menu is currently shown
     private boolean menuIsShown = false;
@@ -63,7 +129,51 @@ public abstract class SlideView extends LinearLayout {
 	protected Activity act;
 	private TranslateAnimation slideRightAnim;
 	private TranslateAnimation slideMenuLeftAnim;
+	private TranslateAnimation slideContentRightAnim;
 	private TranslateAnimation slideContentLeftAnim;
+
+	// snapshot mode: a bitmap of the content is slid instead of the live content
+	private boolean snapshotEnabled = false;
+	private Bitmap snapshotBitmap; // kept for the next slide if the size still fits
+	private ImageView snapshotView;
+	private Animation snapshotAnim; // the animation currently running on snapshotView
+	private final Animation.AnimationListener snapshotAnimListener = new Animation.AnimationListener() {
+		@Override
+		public void onAnimationStart(Animation animation) {
+		}
+
+		@Override
+		public void onAnimationEnd(final Animation animation) {
+			// can't modify the view hierarchy while it's drawn
+			parent.post(new Runnable() {
+				@Override
+				public void run() {
+					if(animation == snapshotAnim)
+						endSnapshot();
+				}
+			});
+		}
+
+		@Override
+		public void onAnimationRepeat(Animation animation) {
+		}
+	};
+
+	// physics mode: a spring moves menu and content instead of the animations above
+	private boolean physicsEnabled = false;
+	private float springStiffness = 300; // 1/s^2
+	private float springDampingRatio = 1;
+	private float springPosition; // how far the menu is slid in, 0 is closed, menuSize is open
+	private float springVelocity; // px/s
+	private float springTarget;
+	private long springLastFrame;
+	private boolean springRunning = false;
+	private final Runnable springStep = new Runnable() {
+		@Override
+		public void run() {
+			stepSpring();
+		}
+	};
 	
 	/**
 	 * Constructor used by the inflation apparatus.
@@ -99,13 +209,21 @@ public abstract class SlideView extends LinearLayout {
         slideRightAnim.setFillAfter(true);
         slideMenuLeftAnim = new TranslateAnimation(0, -menuSize, 0, 0);
         slideMenuLeftAnim.setFillAfter(true);
+        slideContentRightAnim = new TranslateAnimation(-menuSize, 0, 0, 0);
+        slideContentRightAnim.setFillAfter(true);
+        slideContentRightAnim.setAnimationListener(snapshotAnimListener);
         slideContentLeftAnim = new TranslateAnimation(menuSize, 0, 0, 0);
         slideContentLeftAnim.setFillAfter(true);
+        slideContentLeftAnim.setAnimationListener(snapshotAnimListener);
         setAnimationDuration(slideDuration);
+
+        // get notified about memory pressure, only available from API level 14 on
+        if(Build.VERSION.SDK_INT >= 14)
+            TrimMemoryCallbacks.add(act, this);
 	}
 
     /**
-     * Set how long slide animation should be
+     * Set how long slide animation should be. Not used in physics mode.
      * @see TranslateAnimation#setDuration(long)
      * @param slideDuration
      *                     How long to set the slide animation
@@ -113,11 +231,12 @@ public abstract class SlideView extends LinearLayout {
     public void setAnimationDuration(long slideDuration) {
         slideRightAnim.setDuration(slideDuration);
         slideMenuLeftAnim.setDuration(slideDuration*3/2);
+        slideContentRightAnim.setDuration(slideDuration);
         slideContentLeftAnim.setDuration(slideDuration*3/2);
     }
 
     /**
-     * Set an Interpolator for the slide animation.
+     * Set an Interpolator for the slide animation. Not used in physics mode.
      * @see TranslateAnimation#setInterpolator(Interpolator)
      * @param i
      *         The {@link Interpolator} object to set.
@@ -125,9 +244,74 @@ public abstract class SlideView extends LinearLayout {
     public void setAnimationInterpolator(Interpolator i) {
         slideRightAnim.setInterpolator(i);
         slideMenuLeftAnim.setInterpolator(i);
+        slideContentRightAnim.setInterpolator(i);
         slideContentLeftAnim.setInterpolator(i);
     }
 
+    /**
+     * Makes the menu slide in and out driven by a spring instead of a fixed-duration animation.
+     * Then show() and hide() can be called at any time during a slide and the menu turns
+     * around smoothly from where it is, keeping its speed.
+     * Needs API level 11, below that the regular animations are used.
+     * @param enabled
+     */
+    public void setPhysicsEnabled(boolean enabled) {
+        // finish any ongoing slide right away, the animations can't take over from the spring
+        if(!enabled && springRunning) {
+            springPosition = springTarget;
+            springVelocity = 0;
+            stopSpring();
+        }
+        physicsEnabled = enabled && Build.VERSION.SDK_INT >= 11;
+    }
+
+    /**
+     * Makes show() and hide() slide a snapshot bitmap of the content instead of the content itself,
+     * which is hidden meanwhile. This saves redrawing the whole content on every frame, which
+     * pays off for heavy content like complex lists, at the cost of keeping a screen-sized bitmap.
+     * The snapshot is drawn in software, which can't capture SurfaceViews (i.e. maps, video, GL),
+     * TextureViews or hardware accelerated WebViews. Content containing any of these is slid live.
+     * @param enabled
+     */
+    public void setSnapshotSlidingEnabled(boolean enabled) {
+        snapshotEnabled = enabled;
+        if(!enabled) {
+            endSnapshot();
+            releaseSnapshot();
+        }
+    }
+
+    /**
+     * Tunes the spring used in physics mode.
+     * @param stiffness Spring stiffness, higher is faster. Default is 300.
+     * @param dampingRatio 1 for no overshoot, lower values overshoot more. Default is 1.
+     */
+    public void setSpringParameters(float stiffness, float dampingRatio) {
+        springStiffness = stiffness;
+        springDampingRatio = dampingRatio;
+    }
+
+    /**
+     * Shows or hides the menu depending on the direction of the given velocity,
+     * i.e. as the result of a fling gesture. In physics mode, the menu starts out at that velocity.
+     * @param velocityX Horizontal velocity in pixels per second, positive to show.
+     */
+    public void fling(float velocityX) {
+        // like toggle(), only if there's something to do
+        if (menu == null)
+            menuIsShown = false;
+        boolean show = velocityX > 0;
+        if(show == menuIsShown)
+            return;
+
+        if(physicsEnabled)
+            springVelocity = velocityX;
+        if(show)
+            show();
+        else
+            hide();
+    }
+
 	public void toggle() {
 		if (menu == null)
 			menuIsShown = false;
@@ -159,6 +343,19 @@ public abstract class SlideView extends LinearLayout {
     @SuppressLint("NewApi")
     private void show(boolean animate) {
 
+        // an interrupted hide in physics mode: the menu is still there, just turn around
+        if(physicsEnabled && menu != null && menu.getParent() != null) {
+            menuIsShown = true;
+            if(animate)
+                animateSpringTo(menuSize);
+            else {
+                springPosition = springTarget = menuSize;
+                springVelocity = 0;
+                stopSpring();
+            }
+            return;
+        }
+
 		/*
 		 *  We have to adopt to status bar height in most cases,
 		 *  but not if there is a support actionbar!
@@ -198,12 +395,9 @@ public abstract class SlideView extends LinearLayout {
         parm.setMargins(menuSize, 0, -menuSize, 0);
         content.setLayoutParams(parm);
 
-        // animation for smooth slide-out
-        if(animate)
-            content.startAnimation(slideRightAnim);
-
         // quirk for sony xperia devices on ICS only, shouldn't hurt on others
-        if(Build.VERSION.SDK_INT >= 11 && Build.VERSION.SDK_INT <= 15  && Build.MANUFACTURER.contains("Sony") && menuWasShown)
+        // (physics mode sets the position itself)
+        if(Build.VERSION.SDK_INT >= 11 && Build.VERSION.SDK_INT <= 15  && Build.MANUFACTURER.contains("Sony") && menuWasShown && !physicsEnabled)
             content.setX(menuSize);
 
         // add the slide menu to parent
@@ -227,8 +421,23 @@ public abstract class SlideView extends LinearLayout {
         parent.addView(menu);
 
         // slide menu in
-        if(animate)
+        if(physicsEnabled) {
+            content.clearAnimation();
+            springPosition = animate ? 0 : menuSize;
+            springTarget = springPosition;
+            if(animate)
+                beginSnapshot();
+            applySpringPosition();
+            if(animate)
+                animateSpringTo(menuSize);
+            else
+                springVelocity = 0;
+        }
+        else if(animate) {
+            // animation for smooth slide-out
+            startContentAnimation(slideContentRightAnim);
             menu.startAnimation(slideRightAnim);
+        }
 
 
         menu.findViewById(R.id.overlay).setOnClickListener(new OnClickListener() {
@@ -251,15 +460,20 @@ public abstract class SlideView extends LinearLayout {
     @SuppressLint("NewApi")
     public void hide() {
     	if (menuIsShown && menu != null) {
+    		if(physicsEnabled) {
+    			// the menu stays attached until the spring has closed it
+    			if(!springRunning)
+    				springPosition = menuSize;
+    			menuIsShown = false;
+    			beginSnapshot();
+    			applySpringPosition();
+    			animateSpringTo(0);
+    			return;
+    		}
+
 	        menu.startAnimation(slideMenuLeftAnim);
-	        parent.removeView(menu);
-	
-	        content.startAnimation(slideContentLeftAnim);
-	
-	        FrameLayout.LayoutParams parm = (FrameLayout.LayoutParams) content.getLayoutParams();
-	        parm.setMargins(0, 0, 0, 0);
-	        content.setLayoutParams(parm);
-	        enableDisableViewGroup(content, true);
+	        detachMenu();
+	        startContentAnimation(slideContentLeftAnim);
 	
 	        // quirk for sony xperia devices on ICS only, shouldn't hurt on others
 	        if(Build.VERSION.SDK_INT >= 11 && Build.VERSION.SDK_INT <= 15 && Build.MANUFACTURER.contains("Sony"))
@@ -269,6 +483,200 @@ public abstract class SlideView extends LinearLayout {
         menuIsShown = false;
     }
 
+
+    // removes the menu and puts the content back into place
+    private void detachMenu() {
+        parent.removeView(menu);
+
+        FrameLayout.LayoutParams parm = (FrameLayout.LayoutParams) content.getLayoutParams();
+        parm.setMargins(0, 0, 0, 0);
+        content.setLayoutParams(parm);
+        enableDisableViewGroup(content, true);
+    }
+
+
+    // animates the snapshot if in snapshot mode, the content otherwise
+    private void startContentAnimation(Animation a) {
+        View v = beginSnapshot();
+        if(v == snapshotView)
+            snapshotAnim = a;
+        v.startAnimation(a);
+    }
+
+
+    /*
+     * In snapshot mode, puts a snapshot of the content in place of the content and hides the latter.
+     * Returns the view to slide, which is the content if not in snapshot mode or if there's no snapshot.
+     */
+    private View beginSnapshot() {
+        if(!snapshotEnabled)
+            return content;
+
+        // not shown yet, the live content is already hidden behind an earlier snapshot otherwise
+        if(snapshotView == null || snapshotView.getParent() == null) {
+            int w = content.getWidth();
+            int h = content.getHeight();
+            if(w == 0 || h == 0 || hasUncapturableView(content))
+                return content;
+
+            try {
+                if(snapshotBitmap == null || snapshotBitmap.isRecycled()
+                        || snapshotBitmap.getWidth() != w || snapshotBitmap.getHeight() != h)
+                    snapshotBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                else
+                    snapshotBitmap.eraseColor(0);
+            }
+            catch(OutOfMemoryError e) {
+                snapshotBitmap = null;
+                return content;
+            }
+            content.draw(new Canvas(snapshotBitmap));
+
+            if(snapshotView == null)
+                snapshotView = new ImageView(act);
+            snapshotView.setImageBitmap(snapshotBitmap);
+            parent.addView(snapshotView, parent.indexOfChild(content) + 1);
+            content.setVisibility(View.INVISIBLE);
+        }
+
+        // take over the content's place
+        FrameLayout.LayoutParams contentParm = (FrameLayout.LayoutParams) content.getLayoutParams();
+        FrameLayout.LayoutParams parm = new FrameLayout.LayoutParams(-1, -1, 3);
+        parm.setMargins(contentParm.leftMargin, contentParm.topMargin, contentParm.rightMargin, contentParm.bottomMargin);
+        snapshotView.setLayoutParams(parm);
+
+        return snapshotView;
+    }
+
+    // whether there's a view in the given tree that would end up blank in a software-drawn snapshot
+    @SuppressLint("NewApi")
+    private static boolean hasUncapturableView(ViewGroup viewGroup) {
+        for (int i = 0; i < viewGroup.getChildCount(); i++) {
+            View view = viewGroup.getChildAt(i);
+            if(view.getVisibility() != View.VISIBLE)
+                continue;
+            if(view instanceof SurfaceView)
+                return true;
+            if(Build.VERSION.SDK_INT >= 14 && view instanceof TextureView)
+                return true;
+            if(Build.VERSION.SDK_INT >= 11 && view instanceof WebView && view.isHardwareAccelerated())
+                return true;
+            if(view instanceof ViewGroup && hasUncapturableView((ViewGroup) view))
+                return true;
+        }
+        return false;
+    }
+
+    // brings back the live content
+    @SuppressLint("NewApi")
+    private void endSnapshot() {
+        snapshotAnim = null;
+        if(snapshotView == null || snapshotView.getParent() == null)
+            return;
+
+        snapshotView.clearAnimation();
+        if(Build.VERSION.SDK_INT >= 11)
+            snapshotView.setTranslationX(0);
+        parent.removeView(snapshotView);
+        content.setVisibility(View.VISIBLE);
+    }
+
+    // frees the pooled snapshot unless it's in use
+    private void releaseSnapshot() {
+        if(snapshotView != null && snapshotView.getParent() != null)
+            return;
+
+        if(snapshotView != null)
+            snapshotView.setImageDrawable(null);
+        snapshotView = null;
+        if(snapshotBitmap != null)
+            snapshotBitmap.recycle();
+        snapshotBitmap = null;
+    }
+
+
+    private void animateSpringTo(float target) {
+        springTarget = target;
+        if(!springRunning) {
+            springRunning = true;
+            springLastFrame = SystemClock.uptimeMillis();
+            scheduleSpringStep();
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void scheduleSpringStep() {
+        if(Build.VERSION.SDK_INT >= 16)
+            content.postOnAnimation(springStep);
+        else
+            content.postDelayed(springStep, 16);
+    }
+
+    private void stepSpring() {
+        if(!springRunning)
+            return;
+
+        long now = SystemClock.uptimeMillis();
+        // don't jump too far after a stall
+        float dt = Math.min((now - springLastFrame) / 1000f, 0.064f);
+        springLastFrame = now;
+
+        // damped spring, integrated in small steps to stay stable with stiff springs
+        float damping = 2 * springDampingRatio * (float) Math.sqrt(springStiffness);
+        int steps = (int) Math.ceil(dt / 0.004f);
+        for (int i = 0; i < steps; ++i) {
+            float h = dt / steps;
+            float accel = -springStiffness * (springPosition - springTarget) - damping * springVelocity;
+            springVelocity += accel * h;
+            springPosition += springVelocity * h;
+        }
+
+        // the menu can't go further than fully open or closed
+        if(springPosition > menuSize) {
+            springPosition = menuSize;
+            springVelocity = Math.min(springVelocity, 0);
+        }
+        if(springPosition < 0) {
+            springPosition = 0;
+            springVelocity = Math.max(springVelocity, 0);
+        }
+
+        if(Math.abs(springPosition - springTarget) < 0.5f && Math.abs(springVelocity) < 5) {
+            springPosition = springTarget;
+            springVelocity = 0;
+            stopSpring();
+            return;
+        }
+
+        applySpringPosition();
+        scheduleSpringStep();
+    }
+
+    // stops the spring where it is, finishing the hide if the menu ended up closed
+    @SuppressLint("NewApi")
+    private void stopSpring() {
+        springRunning = false;
+        content.removeCallbacks(springStep);
+        applySpringPosition();
+
+        if(!menuIsShown && menu != null && menu.getParent() != null) {
+            content.setTranslationX(0);
+            menu.setTranslationX(0);
+            detachMenu();
+        }
+        endSnapshot();
+    }
+
+    @SuppressLint("NewApi")
+    private void applySpringPosition() {
+        float x = springPosition - menuSize;
+        content.setTranslationX(x);
+        if(snapshotView != null)
+            snapshotView.setTranslationX(x);
+        if(menu != null)
+            menu.setTranslationX(x);
+    }
+
 	
     private void getStatusbarHeight() {
         // Only do this if not already set.
@@ -344,6 +752,38 @@ public abstract class SlideView extends LinearLayout {
 	}
 	
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		// back after having been detached
+		if(act != null && Build.VERSION.SDK_INT >= 14)
+			TrimMemoryCallbacks.add(act, this);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// most probably the activity is going away
+		if(Build.VERSION.SDK_INT >= 14)
+			TrimMemoryCallbacks.remove(this);
+	}
+
+
+	/**
+	 * Called on memory pressure, releases what gets rebuilt on the next show() anyway.
+	 * Subclasses can release more, but should call through.
+	 * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* levels.
+	 */
+	protected void onTrimMemory(int level) {
+		// the view tree of a hidden menu, including the list's recycled rows
+		if(!menuIsShown && !springRunning && menu != null && menu.getParent() == null)
+			menu = null;
+
+		// the pooled content snapshot
+		releaseSnapshot();
+	}
+
+
 	public abstract View inflateSlideview(LayoutInflater inflater);
 
 	